@@ -1,22 +1,32 @@
 package org.dmfs.android.syncstate;
 
 import android.accounts.Account;
+import android.content.ContentProviderClient;
 import android.content.Context;
+import android.net.Uri;
 import android.os.RemoteException;
 import android.provider.CalendarContract;
+import android.provider.SyncStateContract;
 
 import org.dmfs.xmlobjects.ElementDescriptor;
 import org.dmfs.xmlobjects.QualifiedName;
 import org.dmfs.xmlobjects.XmlContext;
+import org.dmfs.xmlobjects.builder.ListObjectBuilder;
 import org.dmfs.xmlobjects.builder.StringObjectBuilder;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import androidx.test.platform.app.InstrumentationRegistry;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -39,6 +49,18 @@ public class CalendarSyncStateTest
     private final static ElementDescriptor<String> ELEMENT2 = ElementDescriptor.register(QualifiedName.get("http://dmfs.org/ns/b", "element2"),
             StringObjectBuilder.INSTANCE);
 
+    /**
+     * Test descriptor of a list element.
+     */
+    private final static ElementDescriptor<String> ETAG = ElementDescriptor.register(QualifiedName.get("http://dmfs.org/ns/c", "etag"),
+            StringObjectBuilder.INSTANCE);
+
+    /**
+     * Test descriptor of a list that we add to the sync state.
+     */
+    private final static ElementDescriptor<List<String>> ETAGS = ElementDescriptor.register(QualifiedName.get("http://dmfs.org/ns/c", "etags"),
+            new ListObjectBuilder<String>(ETAG));
+
     /**
      * An {@link XmlContext}.
      */
@@ -100,6 +122,241 @@ public class CalendarSyncStateTest
     }
 
 
+    @Test
+    public void testCalendarSyncStateLongValues() throws IOException, RemoteException
+    {
+        Account testAccount = new Account("test3", CalendarContract.ACCOUNT_TYPE_LOCAL);
+        LongDescriptor counter = new LongDescriptor("org.dmfs.test.counter");
+        LongDescriptor timestamp = new LongDescriptor("org.dmfs.test.timestamp");
+
+        // create a new CalendarSyncState for the test account
+        SyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+
+        // the values must not exist yet
+        assertEquals(-1, s.getLong(counter, -1));
+        assertEquals(-1, s.getLong(timestamp, -1));
+
+        // set and increment the values
+        s.setLong(timestamp, 1589371234567L);
+        assertEquals(1, s.increment(counter, 1));
+        assertEquals(11, s.increment(counter, 10));
+
+        // store the sync state
+        s.store();
+
+        // load the sync state into a new CalendarSyncState
+        SyncState s2 = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s2.load();
+
+        // make sure that the values are returned correctly
+        assertEquals(11, s2.getLong(counter, -1));
+        assertEquals(1589371234567L, s2.getLong(timestamp, -1));
+
+        // remove one of the values and store the sync state again
+        s2.removeLong(counter);
+        assertEquals(-1, s2.getLong(counter, -1));
+        s2.store();
+
+        // make sure the removed value is gone from the stored sync state
+        SyncState s3 = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s3.load();
+        assertEquals(-1, s3.getLong(counter, -1));
+        assertEquals(1589371234567L, s3.getLong(timestamp, -1));
+    }
+
+
+    @Test
+    public void testCalendarSyncStateStream() throws IOException, RemoteException
+    {
+        Account testAccount = new Account("test4", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store a sync state with two values
+        BaseXmlSyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ELEMENT1, "some string value");
+        s.set(ELEMENT2, "some other string value");
+        s.store();
+
+        // stream one of the values from a new CalendarSyncState
+        final List<String> values = new ArrayList<String>();
+        BaseXmlSyncState s2 = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        SyncStateCopy copy = s2.stream(ELEMENT1, new SyncStateVisitor<String>()
+        {
+            @Override
+            public boolean visit(String value)
+            {
+                values.add(value);
+                return true;
+            }
+        });
+
+        // make sure only the requested value has been streamed, without loading it into the sync state
+        assertEquals(SyncStateCopy.PRIMARY, copy);
+        assertEquals(Collections.singletonList("some string value"), values);
+        assertNull(s2.get(ELEMENT1));
+    }
+
+
+    @Test
+    public void testCalendarSyncStateStreamNested() throws IOException, RemoteException
+    {
+        Account testAccount = new Account("test7", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store a sync state with a list of values
+        BaseXmlSyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ETAGS, Arrays.asList("etag1", "etag2", "etag3"));
+        s.store();
+
+        // stream the nested values
+        final List<String> values = new ArrayList<String>();
+        BaseXmlSyncState s2 = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        assertEquals(SyncStateCopy.PRIMARY, s2.stream(ETAG, new SyncStateVisitor<String>()
+        {
+            @Override
+            public boolean visit(String value)
+            {
+                values.add(value);
+                return true;
+            }
+        }, ETAGS));
+        assertEquals(Arrays.asList("etag1", "etag2", "etag3"), values);
+
+        // stop streaming after the second value
+        final List<String> firstValues = new ArrayList<String>();
+        s2.stream(ETAG, new SyncStateVisitor<String>()
+        {
+            @Override
+            public boolean visit(String value)
+            {
+                firstValues.add(value);
+                return firstValues.size() < 2;
+            }
+        }, ETAGS);
+        assertEquals(Arrays.asList("etag1", "etag2"), firstValues);
+    }
+
+
+    @Test
+    public void testCalendarSyncStateStreamEmptyValue() throws IOException, RemoteException
+    {
+        Account testAccount = new Account("test8", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store a sync state with an empty value in the middle of a list
+        BaseXmlSyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ETAGS, Arrays.asList("etag1", "", "etag3"));
+        s.store();
+
+        // stream the nested values
+        final List<String> values = new ArrayList<String>();
+        BaseXmlSyncState s2 = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s2.stream(ETAG, new SyncStateVisitor<String>()
+        {
+            @Override
+            public boolean visit(String value)
+            {
+                values.add(value);
+                return true;
+            }
+        }, ETAGS);
+
+        // make sure the empty value doesn't end the stream
+        assertEquals(3, values.size());
+        assertEquals("etag1", values.get(0));
+        assertTrue(values.get(1) == null || values.get(1).isEmpty());
+        assertEquals("etag3", values.get(2));
+    }
+
+
+    @Test
+    public void testCalendarSyncStatePruning() throws IOException, InterruptedException
+    {
+        Account testAccount = new Account("test5", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // create a new CalendarSyncState with one expiring and one permanent value
+        LongDescriptor counter = new LongDescriptor("org.dmfs.test.expiring");
+        LongDescriptor timestamp = new LongDescriptor("org.dmfs.test.permanent");
+        BaseXmlSyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ELEMENT1, "some string value", 1);
+        s.set(ELEMENT2, "some other string value");
+        s.setLong(counter, 1, 1);
+        s.setLong(timestamp, 2);
+
+        // let the expiring values expire and store the sync state
+        Thread.sleep(10);
+        s.store();
+
+        // make sure the expired values have been dropped
+        assertEquals(2, s.prunedEntries());
+        assertNull(s.get(ELEMENT1));
+        assertEquals("some other string value", s.get(ELEMENT2));
+        assertEquals(-1, s.getLong(counter, -1));
+        assertEquals(2, s.getLong(timestamp, -1));
+
+        // load the sync state into a new CalendarSyncState
+        SyncState s2 = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s2.load();
+
+        // make sure only the permanent values have been stored
+        assertNull(s2.get(ELEMENT1));
+        assertEquals("some other string value", s2.get(ELEMENT2));
+        assertEquals(-1, s2.getLong(counter, -1));
+        assertEquals(2, s2.getLong(timestamp, -1));
+    }
+
+
+    @Test
+    public void testCalendarSyncStateLastKnownGood() throws IOException, RemoteException
+    {
+        Account testAccount = new Account("test6", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store the sync state twice, so the first version becomes the last-known-good copy
+        BaseXmlSyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount, true);
+        s.set(ELEMENT1, "first value");
+        s.store();
+        s.set(ELEMENT1, "second value");
+        s.store();
+
+        // an intact sync state is loaded from the primary copy
+        BaseXmlSyncState s2 = new CalendarSyncState(getContext().getContentResolver(), testAccount, true);
+        s2.load();
+        assertEquals(SyncStateCopy.PRIMARY, s2.loadedCopy());
+        assertEquals("second value", s2.get(ELEMENT1));
+
+        ContentProviderClient client = getContext().getContentResolver().acquireContentProviderClient(CalendarContract.AUTHORITY);
+        try
+        {
+            // cut off the end of the stored blob, which damages the primary copy
+            byte[] blob = SyncStateContract.Helpers.get(client, syncStateUri(testAccount), testAccount);
+            SyncStateContract.Helpers.set(client, syncStateUri(testAccount), testAccount, Arrays.copyOf(blob, blob.length - 5));
+
+            // the last-known-good copy is loaded instead
+            BaseXmlSyncState s3 = new CalendarSyncState(getContext().getContentResolver(), testAccount, true);
+            s3.load();
+            assertEquals(SyncStateCopy.LAST_KNOWN_GOOD, s3.loadedCopy());
+            assertEquals("first value", s3.get(ELEMENT1));
+
+            // cut off everything but the header, which damages both copies
+            SyncStateContract.Helpers.set(client, syncStateUri(testAccount), testAccount, Arrays.copyOf(blob, 10));
+
+            BaseXmlSyncState s4 = new CalendarSyncState(getContext().getContentResolver(), testAccount, true);
+            try
+            {
+                s4.load();
+                fail("loading a sync state without intact copy must fail");
+            }
+            catch (IOException e)
+            {
+                // expected
+            }
+            assertEquals(SyncStateCopy.NONE, s4.loadedCopy());
+            assertNull(s4.get(ELEMENT1));
+        }
+        finally
+        {
+            client.release();
+        }
+    }
+
+
     @Test
     public void testCalendarSyncStateWithContext() throws IOException, RemoteException
     {
@@ -143,6 +400,14 @@ public class CalendarSyncStateTest
     }
 
 
+    private Uri syncStateUri(Account account)
+    {
+        return CalendarContract.SyncState.CONTENT_URI.buildUpon().appendQueryParameter(CalendarContract.CALLER_IS_SYNCADAPTER, "true")
+                .appendQueryParameter(CalendarContract.SyncState.ACCOUNT_TYPE, account.type)
+                .appendQueryParameter(CalendarContract.SyncState.ACCOUNT_NAME, account.name).build();
+    }
+
+
     private Context getContext()
     {
         return InstrumentationRegistry.getInstrumentation().getContext();
@@ -0,0 +1,191 @@
+package org.dmfs.android.syncstate;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.provider.CalendarContract;
+
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.QualifiedName;
+import org.dmfs.xmlobjects.builder.StringObjectBuilder;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Test {@link SyncStatePrefetcher}.
+ */
+public class SyncStatePrefetcherTest
+{
+
+    /**
+     * Test descriptor that we add to the sync state.
+     */
+    private final static ElementDescriptor<String> ELEMENT = ElementDescriptor.register(QualifiedName.get("http://dmfs.org/ns/a", "prefetch_element"),
+            StringObjectBuilder.INSTANCE);
+
+
+    @Test
+    public void testPrefetch() throws IOException
+    {
+        Account testAccount = new Account("prefetch", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store a sync state
+        SyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ELEMENT, "some string value");
+        s.store();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            SyncStatePrefetcher prefetcher = new SyncStatePrefetcher(getContext().getContentResolver(), executor, 1);
+            prefetcher.prefetch(testAccount, CalendarContract.AUTHORITY);
+
+            // make sure the prefetched sync state contains the value
+            assertEquals("some string value", prefetcher.take(testAccount, CalendarContract.AUTHORITY).get(ELEMENT));
+
+            // the prefetched instance has been handed out, taking it again loads a new one
+            assertEquals("some string value", prefetcher.take(testAccount, CalendarContract.AUTHORITY).get(ELEMENT));
+
+            // a cancelled prefetch is loaded synchronously
+            prefetcher.prefetch(testAccount, CalendarContract.AUTHORITY);
+            prefetcher.cancelAll();
+            assertEquals("some string value", prefetcher.take(testAccount, CalendarContract.AUTHORITY).get(ELEMENT));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testTakeQueued() throws IOException
+    {
+        Account testAccount = new Account("prefetch2", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store a sync state
+        SyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ELEMENT, "some string value");
+        s.store();
+
+        // an executor that never runs anything, prefetches stay queued forever
+        SyncStatePrefetcher prefetcher = new SyncStatePrefetcher(getContext().getContentResolver(), new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                // never run
+            }
+        }, 1);
+        prefetcher.prefetch(testAccount, CalendarContract.AUTHORITY);
+
+        // make sure take() loads the queued sync state instead of waiting for it
+        assertEquals("some string value", prefetcher.take(testAccount, CalendarContract.AUTHORITY).get(ELEMENT));
+    }
+
+
+    @Test
+    public void testPrefetchRejected() throws IOException
+    {
+        Account testAccount = new Account("prefetch3", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store a sync state
+        SyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ELEMENT, "some string value");
+        s.store();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        SyncStatePrefetcher prefetcher = new SyncStatePrefetcher(getContext().getContentResolver(), executor, 1);
+        try
+        {
+            prefetcher.prefetch(testAccount, CalendarContract.AUTHORITY);
+            fail("a shut down executor must reject the prefetch");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+
+        // make sure the rejected prefetch doesn't block take()
+        assertEquals("some string value", prefetcher.take(testAccount, CalendarContract.AUTHORITY).get(ELEMENT));
+    }
+
+
+    @Test
+    public void testTakeMaxAge() throws IOException, InterruptedException
+    {
+        Account testAccount = new Account("prefetch4", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // store a sync state
+        SyncState s = new CalendarSyncState(getContext().getContentResolver(), testAccount);
+        s.set(ELEMENT, "old value");
+        s.store();
+
+        // prefetch it on the calling thread
+        SyncStatePrefetcher prefetcher = new SyncStatePrefetcher(getContext().getContentResolver(), new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, 1);
+        prefetcher.prefetch(testAccount, CalendarContract.AUTHORITY);
+
+        // store a newer sync state behind the prefetcher's back
+        s.set(ELEMENT, "new value");
+        s.store();
+        Thread.sleep(10);
+
+        // make sure the outdated snapshot is loaded again
+        assertEquals("new value", prefetcher.take(testAccount, CalendarContract.AUTHORITY, 5).get(ELEMENT));
+    }
+
+
+    @Test
+    public void testMaxConcurrentQueries() throws IOException
+    {
+        Account testAccount1 = new Account("prefetch5", CalendarContract.ACCOUNT_TYPE_LOCAL);
+        Account testAccount2 = new Account("prefetch6", CalendarContract.ACCOUNT_TYPE_LOCAL);
+
+        // an executor that just collects the submitted tasks
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        SyncStatePrefetcher prefetcher = new SyncStatePrefetcher(getContext().getContentResolver(), new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                submitted.add(command);
+            }
+        }, 1);
+        prefetcher.prefetch(testAccount1, CalendarContract.AUTHORITY);
+        prefetcher.prefetch(testAccount2, CalendarContract.AUTHORITY);
+
+        // only one task is submitted, the other one waits in the queue
+        assertEquals(1, submitted.size());
+
+        // completing the first task submits the second one
+        submitted.get(0).run();
+        assertEquals(2, submitted.size());
+    }
+
+
+    private Context getContext()
+    {
+        return InstrumentationRegistry.getInstrumentation().getContext();
+    }
+}
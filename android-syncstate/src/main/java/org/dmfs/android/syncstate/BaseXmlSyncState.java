@@ -31,6 +31,7 @@ import org.dmfs.xmlobjects.ElementDescriptor;
 import org.dmfs.xmlobjects.QualifiedName;
 import org.dmfs.xmlobjects.XmlContext;
 import org.dmfs.xmlobjects.builder.ElementMapObjectBuilder;
+import org.dmfs.xmlobjects.builder.StringObjectBuilder;
 import org.dmfs.xmlobjects.pull.XmlObjectPull;
 import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
 import org.dmfs.xmlobjects.pull.XmlPath;
@@ -47,7 +48,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -72,6 +75,24 @@ public abstract class BaseXmlSyncState implements SyncState
     private final static ElementDescriptor<Map<ElementDescriptor<?>, Object>> SYNCSTATE_DESCRIPTOR = ElementDescriptor.register(
             QualifiedName.get("http://dmfs.org/ns/syncstate", "syncstate"), ElementMapObjectBuilder.INSTANCE);
 
+    /**
+     * The descriptor of the element that holds all <code>long</code> values in a compact form.
+     */
+    private final static ElementDescriptor<String> LONG_VALUES_DESCRIPTOR = ElementDescriptor.register(
+            QualifiedName.get("http://dmfs.org/ns/syncstate", "longs"), StringObjectBuilder.INSTANCE);
+
+    /**
+     * The descriptor of the element that holds the metadata of all entries in a compact form.
+     */
+    private final static ElementDescriptor<String> ENTRY_META_DESCRIPTOR = ElementDescriptor.register(
+            QualifiedName.get("http://dmfs.org/ns/syncstate", "meta"), StringObjectBuilder.INSTANCE);
+
+    /**
+     * The descriptor of the element that holds the metadata of all <code>long</code> values in a compact form.
+     */
+    private final static ElementDescriptor<String> LONG_META_DESCRIPTOR = ElementDescriptor.register(
+            QualifiedName.get("http://dmfs.org/ns/syncstate", "longmeta"), StringObjectBuilder.INSTANCE);
+
     /**
      * A {@link ContentResolver}.
      */
@@ -92,6 +113,48 @@ public abstract class BaseXmlSyncState implements SyncState
      */
     private final Map<ElementDescriptor<?>, Object> mStateMap = new HashMap<ElementDescriptor<?>, Object>(16);
 
+    /**
+     * A Map that stores all <code>long</code> values of this sync state object. The values are single element arrays that are updated in place.
+     */
+    private final Map<String, long[]> mLongMap = new HashMap<String, long[]>(16);
+
+    /**
+     * A Map that stores the metadata of each entry in {@link #mStateMap}. The values are arrays of the last-touched time and the time to live, which are
+     * updated in place.
+     */
+    private final Map<ElementDescriptor<?>, long[]> mEntryMetaMap = new HashMap<ElementDescriptor<?>, long[]>(16);
+
+    /**
+     * A Map that stores the metadata of each value in {@link #mLongMap}, like {@link #mEntryMetaMap} does for {@link #mStateMap}.
+     */
+    private final Map<String, long[]> mLongMetaMap = new HashMap<String, long[]>(16);
+
+    /**
+     * The {@link PruningPolicy} to apply when storing the sync state.
+     */
+    private PruningPolicy mPruningPolicy = ExpiryPruningPolicy.TTL_ONLY;
+
+    /**
+     * The number of entries that have been pruned by the last call to {@link #store(XmlContext, boolean)}.
+     */
+    private int mPrunedEntries;
+
+    /**
+     * Whether to keep the last-known-good copy of the sync state when storing it.
+     */
+    private final boolean mKeepLastKnownGood;
+
+    /**
+     * The last payload that is known to be good, i.e. the one that has been loaded or stored most recently. This is only retained if {@link
+     * #mKeepLastKnownGood} is <code>true</code>.
+     */
+    private byte[] mLastKnownGood;
+
+    /**
+     * The copy that has been loaded by the last call to {@link #load(XmlContext)}.
+     */
+    private SyncStateCopy mLoadedCopy = SyncStateCopy.NONE;
+
 
     /**
      * Initializes a new {@link BaseXmlSyncState} for the given {@link Account} and {@link Uri}.
@@ -104,10 +167,30 @@ public abstract class BaseXmlSyncState implements SyncState
      *         The {@link Uri} of the sync state table.
      */
     public BaseXmlSyncState(ContentResolver resolver, Account account, Uri uri)
+    {
+        this(resolver, account, uri, false);
+    }
+
+
+    /**
+     * Initializes a new {@link BaseXmlSyncState} for the given {@link Account} and {@link Uri}.
+     *
+     * @param resolver
+     *         A {@link ContentResolver} instance.
+     * @param account
+     *         The {@link Account} of the sync state.
+     * @param uri
+     *         The {@link Uri} of the sync state table.
+     * @param keepLastKnownGood
+     *         <code>true</code> to store the previous sync state along with the current one, so {@link #load(XmlContext)} can fall back to it if the current
+     *         one is corrupt.
+     */
+    public BaseXmlSyncState(ContentResolver resolver, Account account, Uri uri, boolean keepLastKnownGood)
     {
         mResolver = resolver;
         mAccount = account;
         mUri = uri;
+        mKeepLastKnownGood = keepLastKnownGood;
     }
 
 
@@ -121,40 +204,222 @@ public abstract class BaseXmlSyncState implements SyncState
     @Override
     public void load(XmlContext xmlContext) throws IOException
     {
-        try
+        mLoadedCopy = SyncStateCopy.NONE;
+
+        byte[] data = queryBlob();
+        if (data == null)
         {
-            try (Cursor c = mResolver.query(mUri, PROJECTION, SELECTION, new String[] { mAccount.name, mAccount.type }, null))
+            // there is no syncstate yet.
+            return;
+        }
+
+        // verify the checksums before parsing anything, then try the copies in order until one of them can be parsed
+        byte[][] copies = ChecksummedBlob.unwrap(data);
+        IOException error = null;
+        for (int i = 0; i < copies.length; ++i)
+        {
+            if (copies[i] == null)
             {
-                if (c == null || !c.moveToFirst())
+                continue;
+            }
+
+            try
+            {
+                // parse into a separate map first, so a copy that fails half way doesn't leave any garbage behind
+                Map<ElementDescriptor<?>, Object> stateMap = new HashMap<ElementDescriptor<?>, Object>(16);
+                parse(xmlContext, copies[i], stateMap);
+                Map<String, long[]> longMap = new HashMap<String, long[]>(16);
+                String longValues = (String) stateMap.remove(LONG_VALUES_DESCRIPTOR);
+                if (longValues != null)
                 {
-                    // there is no syncstate yet.
-                    return;
+                    LongValueCodec.decode(longValues, longMap);
                 }
-
-                byte[] data = c.getBlob(0);
-
-                if (data == null)
+                Map<String, long[]> entryMetaMap = new HashMap<String, long[]>(16);
+                String entryMeta = (String) stateMap.remove(ENTRY_META_DESCRIPTOR);
+                if (entryMeta != null)
                 {
-                    // there is no syncstate yet.
-                    return;
+                    LongValueCodec.decode(entryMeta, entryMetaMap);
                 }
+                Map<String, long[]> longMetaMap = new HashMap<String, long[]>(16);
+                String longMeta = (String) stateMap.remove(LONG_META_DESCRIPTOR);
+                if (longMeta != null)
+                {
+                    LongValueCodec.decode(longMeta, longMetaMap);
+                }
+                mStateMap.putAll(stateMap);
+                mLongMap.putAll(longMap);
+                // entries without stored metadata have no time to live and their last-touched time has not been recorded, consider them touched now
+                long now = System.currentTimeMillis();
+                for (ElementDescriptor<?> key : stateMap.keySet())
+                {
+                    long[] meta = entryMetaMap.get(metaKey(key));
+                    mEntryMetaMap.put(key, meta != null && meta.length == 2 ? meta : new long[] { now, 0 });
+                }
+                for (String key : longMap.keySet())
+                {
+                    long[] meta = longMetaMap.get(key);
+                    mLongMetaMap.put(key, meta != null && meta.length == 2 ? meta : new long[] { now, 0 });
+                }
+                mLastKnownGood = mKeepLastKnownGood ? copies[i] : null;
+                mLoadedCopy = i == 0 ? SyncStateCopy.PRIMARY : SyncStateCopy.LAST_KNOWN_GOOD;
+                return;
+            }
+            catch (IOException e)
+            {
+                error = e;
+            }
+        }
+
+        throw error != null ? error : new IOException("can't read syncstate, no intact copy found");
+    }
 
-                InputStream in = new ByteArrayInputStream(data);
-                if (data.length > 2 && (data[0] == (byte) (GZIPInputStream.GZIP_MAGIC & 0xff)) && (data[1] == (byte) ((GZIPInputStream.GZIP_MAGIC >> 8) & 0xff)))
+
+    /**
+     * Returns which stored copy of the sync state has been loaded by the last call to {@link #load()} or {@link #load(XmlContext)}.
+     *
+     * @return The {@link SyncStateCopy} that has been loaded.
+     */
+    public SyncStateCopy loadedCopy()
+    {
+        return mLoadedCopy;
+    }
+
+
+    /**
+     * Stream all values of the given {@link ElementDescriptor} in the stored sync state to the given {@link SyncStateVisitor}, using the default {@link
+     * XmlContext}.
+     *
+     * @param descriptor
+     *         The {@link ElementDescriptor} of the values to stream.
+     * @param visitor
+     *         The {@link SyncStateVisitor} to receive the values.
+     * @param parents
+     *         The {@link ElementDescriptor}s of the elements enclosing the values, if any.
+     *
+     * @return The {@link SyncStateCopy} that has been streamed.
+     *
+     * @throws IOException
+     *         if the sync state can't be read.
+     * @see #stream(XmlContext, ElementDescriptor, SyncStateVisitor, ElementDescriptor[])
+     */
+    public <V> SyncStateCopy stream(ElementDescriptor<V> descriptor, SyncStateVisitor<? super V> visitor, ElementDescriptor<?>... parents) throws IOException
+    {
+        return stream(ElementDescriptor.DEFAULT_CONTEXT, descriptor, visitor, parents);
+    }
+
+
+    /**
+     * Stream all values of the given {@link ElementDescriptor} in the stored sync state to the given {@link SyncStateVisitor}, without loading the sync state
+     * into this instance. The values are passed to the visitor one by one while the stored data is being parsed and are not retained, so this can be used to
+     * process large numbers of values in constant memory.
+     * <p>
+     * By default values are expected to be direct children of the sync state root element. Values that are nested in other elements can be streamed by
+     * passing the descriptors of the enclosing elements, outermost first.
+     * <p>
+     * Elements that result in a <code>null</code> value, like empty elements, are passed to the visitor as <code>null</code>.
+     * <p>
+     * Only the stored data is streamed, any changes made to this instance that have not been stored yet are not visible to the visitor. The checksums of the
+     * stored copies are verified before streaming starts. Since values may already have been passed to the visitor, there is no fallback to the
+     * last-known-good copy if the data turns out to be malformed later on.
+     *
+     * @param xmlContext
+     *         The {@link XmlContext} to use.
+     * @param descriptor
+     *         The {@link ElementDescriptor} of the values to stream.
+     * @param visitor
+     *         The {@link SyncStateVisitor} to receive the values.
+     * @param parents
+     *         The {@link ElementDescriptor}s of the elements enclosing the values, if any.
+     *
+     * @return The {@link SyncStateCopy} that has been streamed.
+     *
+     * @throws IOException
+     *         if the sync state can't be read.
+     */
+    public <V> SyncStateCopy stream(XmlContext xmlContext, ElementDescriptor<V> descriptor, SyncStateVisitor<? super V> visitor,
+                                    ElementDescriptor<?>... parents) throws IOException
+    {
+        byte[] data = queryBlob();
+        if (data == null)
+        {
+            // there is no syncstate yet.
+            return SyncStateCopy.NONE;
+        }
+
+        byte[][] copies = ChecksummedBlob.unwrap(data);
+        for (int i = 0; i < copies.length; ++i)
+        {
+            if (copies[i] == null)
+            {
+                continue;
+            }
+
+            ElementDescriptor<?>[] pathElements = new ElementDescriptor<?>[parents.length + 1];
+            pathElements[0] = SYNCSTATE_DESCRIPTOR;
+            System.arraycopy(parents, 0, pathElements, 1, parents.length);
+            XmlPath path = new XmlPath(pathElements);
+
+            try
+            {
+                XmlObjectPull objectPull = objectPull(xmlContext, copies[i]);
+                // don't use null as end marker, an empty element may well result in a null value
+                while (objectPull.moveToNext(descriptor, path))
                 {
-                    // data looks gzip compressed, wrap input in a GZIPInputStream
-                    in = new GZIPInputStream(in);
+                    if (!visitor.visit(objectPull.pull(descriptor, null, path)))
+                    {
+                        break;
+                    }
                 }
+            }
+            catch (XmlPullParserException | XmlObjectPullParserException e)
+            {
+                // the constructor IOException(String, Throwable) is not available on Android 2.2 :-(
+                throw (IOException) (new IOException("can't read syncstate").initCause(e));
+            }
+            return i == 0 ? SyncStateCopy.PRIMARY : SyncStateCopy.LAST_KNOWN_GOOD;
+        }
+
+        throw new IOException("can't read syncstate, no intact copy found");
+    }
+
 
-                // get a pull parser
-                XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-                factory.setNamespaceAware(true);
-                XmlPullParser parser = factory.newPullParser();
-                parser.setInput(in, "UTF-8");
-                XmlObjectPull mObjectPull = new XmlObjectPull(parser);
-                mObjectPull.setContext(xmlContext);
-                mObjectPull.pull(SYNCSTATE_DESCRIPTOR, mStateMap, EMPTY_PATH);
+    /**
+     * Returns the stored sync state blob.
+     *
+     * @return The blob or <code>null</code> if there is no stored sync state.
+     */
+    private byte[] queryBlob()
+    {
+        try (Cursor c = mResolver.query(mUri, PROJECTION, SELECTION, new String[] { mAccount.name, mAccount.type }, null))
+        {
+            if (c == null || !c.moveToFirst())
+            {
+                return null;
             }
+
+            return c.getBlob(0);
+        }
+    }
+
+
+    /**
+     * Parse the given payload into the given {@link Map}.
+     *
+     * @param xmlContext
+     *         The {@link XmlContext} to use.
+     * @param payload
+     *         The payload, either plain or gzip compressed XML.
+     * @param stateMap
+     *         The {@link Map} to add the values to.
+     *
+     * @throws IOException
+     *         if the payload can't be parsed.
+     */
+    private void parse(XmlContext xmlContext, byte[] payload, Map<ElementDescriptor<?>, Object> stateMap) throws IOException
+    {
+        try
+        {
+            objectPull(xmlContext, payload).pull(SYNCSTATE_DESCRIPTOR, stateMap, EMPTY_PATH);
         }
         catch (XmlPullParserException | XmlObjectPullParserException e)
         {
@@ -164,10 +429,68 @@ public abstract class BaseXmlSyncState implements SyncState
     }
 
 
+    /**
+     * Returns an {@link XmlObjectPull} that reads the given payload.
+     *
+     * @param xmlContext
+     *         The {@link XmlContext} to use.
+     * @param payload
+     *         The payload, either plain or gzip compressed XML.
+     *
+     * @return An {@link XmlObjectPull}.
+     */
+    private XmlObjectPull objectPull(XmlContext xmlContext, byte[] payload) throws IOException, XmlPullParserException
+    {
+        InputStream in = new ByteArrayInputStream(payload);
+        if (payload.length > 2 && (payload[0] == (byte) (GZIPInputStream.GZIP_MAGIC & 0xff)) && (payload[1] == (byte) ((GZIPInputStream.GZIP_MAGIC >> 8) & 0xff)))
+        {
+            // data looks gzip compressed, wrap input in a GZIPInputStream
+            in = new GZIPInputStream(in);
+        }
+
+        // get a pull parser
+        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XmlPullParser parser = factory.newPullParser();
+        parser.setInput(in, "UTF-8");
+        XmlObjectPull objectPull = new XmlObjectPull(parser);
+        objectPull.setContext(xmlContext);
+        return objectPull;
+    }
+
+
     @SuppressWarnings("unchecked")
     @Override
     public <V> V set(ElementDescriptor<V> key, V value)
     {
+        touch(mEntryMetaMap, key);
+        // we can safely cast, the <V> parameter will ensure type safety.
+        return (V) mStateMap.put(key, value);
+    }
+
+
+    /**
+     * Add the given key value pair to the sync state, overriding any previous value for the given key. The entry expires if it's not set or read again within
+     * the given time to live. Expired entries are dropped by {@link #store(XmlContext, boolean)}. Note that values read by {@link #stream(XmlContext,
+     * ElementDescriptor, SyncStateVisitor, ElementDescriptor[])} are not considered touched.
+     *
+     * @param key
+     *         The key to store.
+     * @param value
+     *         The value to store.
+     * @param ttl
+     *         The time to live in milliseconds, or <code>0</code> if the entry never expires.
+     *
+     * @return The previously stored value or <code>null</code> if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V set(ElementDescriptor<V> key, V value, long ttl)
+    {
+        if (ttl < 0)
+        {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        touch(mEntryMetaMap, key, ttl);
         // we can safely cast, the <V> parameter will ensure type safety.
         return (V) mStateMap.put(key, value);
     }
@@ -177,11 +500,228 @@ public abstract class BaseXmlSyncState implements SyncState
     @Override
     public <V> V get(ElementDescriptor<V> key)
     {
+        touchOnRead(mEntryMetaMap.get(key));
         // we can safely cast, the <V> parameter will ensure type safety.
         return (V) mStateMap.get(key);
     }
 
 
+    /**
+     * Set the {@link PruningPolicy} to apply when storing the sync state. By default only entries which have outlived their time to live are dropped.
+     * <p>
+     * The policy applies to both, values stored with an {@link ElementDescriptor} and values stored with a {@link LongDescriptor}. If the policy {@link
+     * PruningPolicy#tracksIdleTime() tracks idle time}, reads count as touches and the last-touched time of all entries is stored with the sync state. Values
+     * read by {@link #stream(XmlContext, ElementDescriptor, SyncStateVisitor, ElementDescriptor[])} are not considered touched, so entries that are only
+     * read that way are dropped once they have been idle for too long.
+     *
+     * @param pruningPolicy
+     *         The {@link PruningPolicy} or <code>null</code> to keep all entries.
+     */
+    public void setPruningPolicy(PruningPolicy pruningPolicy)
+    {
+        mPruningPolicy = pruningPolicy;
+    }
+
+
+    /**
+     * Returns the number of entries that have been dropped by the {@link PruningPolicy} during the last successful call to {@link #store()}, {@link
+     * #store(XmlContext)} or {@link #store(XmlContext, boolean)}.
+     *
+     * @return The number of pruned entries.
+     */
+    public int prunedEntries()
+    {
+        return mPrunedEntries;
+    }
+
+
+    /**
+     * Update the metadata of the given key, setting the last-touched time to now and keeping the time to live, if any.
+     *
+     * @param metaMap
+     *         The metadata {@link Map}.
+     * @param key
+     *         The key of the entry.
+     */
+    private static <K> void touch(Map<K, long[]> metaMap, K key)
+    {
+        long[] meta = metaMap.get(key);
+        if (meta == null)
+        {
+            metaMap.put(key, new long[] { System.currentTimeMillis(), 0 });
+        }
+        else
+        {
+            meta[0] = System.currentTimeMillis();
+        }
+    }
+
+
+    /**
+     * Update the metadata of the given key, setting the last-touched time to now.
+     *
+     * @param metaMap
+     *         The metadata {@link Map}.
+     * @param key
+     *         The key of the entry.
+     * @param ttl
+     *         The time to live of the entry.
+     */
+    private static <K> void touch(Map<K, long[]> metaMap, K key, long ttl)
+    {
+        long[] meta = metaMap.get(key);
+        if (meta == null)
+        {
+            metaMap.put(key, new long[] { System.currentTimeMillis(), ttl });
+        }
+        else
+        {
+            meta[0] = System.currentTimeMillis();
+            meta[1] = ttl;
+        }
+    }
+
+
+    /**
+     * Update the last-touched time of an entry that's being read, if anyone is interested in it.
+     *
+     * @param meta
+     *         The metadata of the entry, may be <code>null</code>.
+     */
+    private void touchOnRead(long[] meta)
+    {
+        if (meta != null && (meta[1] > 0 || tracksIdleTime()))
+        {
+            meta[0] = System.currentTimeMillis();
+        }
+    }
+
+
+    /**
+     * Returns whether the current {@link PruningPolicy} takes the idle time of entries into account.
+     *
+     * @return <code>true</code> if the idle time of entries needs to be tracked.
+     */
+    private boolean tracksIdleTime()
+    {
+        return mPruningPolicy != null && mPruningPolicy.tracksIdleTime();
+    }
+
+
+    /**
+     * Returns the keys of all entries the current {@link PruningPolicy} considers expired.
+     *
+     * @param metaMap
+     *         The metadata {@link Map} of the entries.
+     * @param now
+     *         The current time.
+     *
+     * @return A {@link List} of expired keys.
+     */
+    private <K> List<K> expired(Map<K, long[]> metaMap, long now)
+    {
+        if (mPruningPolicy == null)
+        {
+            return Collections.emptyList();
+        }
+
+        List<K> result = new ArrayList<K>();
+        for (Map.Entry<K, long[]> entry : metaMap.entrySet())
+        {
+            long[] meta = entry.getValue();
+            if (mPruningPolicy.isExpired(entry.getKey(), meta[0], meta[1], now))
+            {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the name under which the metadata of the given key is stored.
+     *
+     * @param key
+     *         The key of an entry.
+     *
+     * @return The name of the metadata entry.
+     */
+    private static String metaKey(ElementDescriptor<?> key)
+    {
+        QualifiedName name = key.qualifiedName;
+        return name.namespace == null ? name.name : "{" + name.namespace + "}" + name.name;
+    }
+
+
+    @Override
+    public long getLong(LongDescriptor key, long defaultValue)
+    {
+        touchOnRead(mLongMetaMap.get(key.name));
+        long[] value = mLongMap.get(key.name);
+        return value == null ? defaultValue : value[0];
+    }
+
+
+    @Override
+    public void setLong(LongDescriptor key, long value)
+    {
+        touch(mLongMetaMap, key.name);
+        long[] current = mLongMap.get(key.name);
+        if (current == null)
+        {
+            mLongMap.put(key.name, new long[] { value });
+        }
+        else
+        {
+            current[0] = value;
+        }
+    }
+
+
+    @Override
+    public long increment(LongDescriptor key, long delta)
+    {
+        touch(mLongMetaMap, key.name);
+        long[] current = mLongMap.get(key.name);
+        if (current == null)
+        {
+            mLongMap.put(key.name, new long[] { delta });
+            return delta;
+        }
+        return current[0] += delta;
+    }
+
+
+    @Override
+    public void removeLong(LongDescriptor key)
+    {
+        mLongMap.remove(key.name);
+        mLongMetaMap.remove(key.name);
+    }
+
+
+    /**
+     * Set the <code>long</code> value of the given key, overriding any previous value for the given key. The value expires if it's not set or read again
+     * within the given time to live. Expired values are dropped by {@link #store(XmlContext, boolean)}.
+     *
+     * @param key
+     *         The key to store.
+     * @param value
+     *         The value to store.
+     * @param ttl
+     *         The time to live in milliseconds, or <code>0</code> if the value never expires.
+     */
+    public void setLong(LongDescriptor key, long value, long ttl)
+    {
+        if (ttl < 0)
+        {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        setLong(key, value);
+        touch(mLongMetaMap, key.name, ttl);
+    }
+
+
     @Override
     public void store() throws IOException
     {
@@ -199,6 +739,12 @@ public abstract class BaseXmlSyncState implements SyncState
     /**
      * Persist the sync state using the given {@link XmlContext}. This method is meant for debugging purposes, since {@link #store()} and {@link
      * #store(XmlContext)} compress the data by default, making it harder to debug.
+     * <p>
+     * The data is stored with a checksum. If this instance has been created to keep the last-known-good copy, the previously loaded or stored sync state is
+     * stored along with it.
+     * <p>
+     * All entries the current {@link PruningPolicy} considers expired are left out. Once the sync state has been stored successfully they are dropped from this
+     * instance too, and their number is returned by {@link #prunedEntries()}.
      *
      * @param xmlContext
      *         The {@link XmlContext} to use.
@@ -209,29 +755,98 @@ public abstract class BaseXmlSyncState implements SyncState
      */
     public void store(XmlContext xmlContext, boolean compress) throws IOException
     {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(mStateMap.size() * 100 /* assume at least 100 bytes per entry */);
+        long now = System.currentTimeMillis();
+        List<ElementDescriptor<?>> expiredEntries = expired(mEntryMetaMap, now);
+        List<String> expiredLongs = expired(mLongMetaMap, now);
+        boolean tracksIdleTime = tracksIdleTime();
+
+        // serialize a filtered view, so nothing is lost if storing fails
+        Map<ElementDescriptor<?>, Object> stateMap = new HashMap<ElementDescriptor<?>, Object>(mStateMap);
+        Map<String, long[]> entryMetaMap = new HashMap<String, long[]>(16);
+        for (ElementDescriptor<?> key : expiredEntries)
+        {
+            stateMap.remove(key);
+        }
+        for (Map.Entry<ElementDescriptor<?>, long[]> entry : mEntryMetaMap.entrySet())
+        {
+            // only store metadata that's actually needed
+            if (stateMap.containsKey(entry.getKey()) && (tracksIdleTime || entry.getValue()[1] > 0))
+            {
+                entryMetaMap.put(metaKey(entry.getKey()), entry.getValue());
+            }
+        }
+
+        Map<String, long[]> longMap = new HashMap<String, long[]>(mLongMap);
+        Map<String, long[]> longMetaMap = new HashMap<String, long[]>(16);
+        for (String key : expiredLongs)
+        {
+            longMap.remove(key);
+        }
+        for (Map.Entry<String, long[]> entry : mLongMetaMap.entrySet())
+        {
+            if (longMap.containsKey(entry.getKey()) && (tracksIdleTime || entry.getValue()[1] > 0))
+            {
+                longMetaMap.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // the long values and the metadata are stored in a single element each
+        if (!longMap.isEmpty())
+        {
+            stateMap.put(LONG_VALUES_DESCRIPTOR, LongValueCodec.encode(longMap));
+        }
+        if (!entryMetaMap.isEmpty())
+        {
+            stateMap.put(ENTRY_META_DESCRIPTOR, LongValueCodec.encode(entryMetaMap));
+        }
+        if (!longMetaMap.isEmpty())
+        {
+            stateMap.put(LONG_META_DESCRIPTOR, LongValueCodec.encode(longMetaMap));
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(stateMap.size() * 100 /* assume at least 100 bytes per entry */);
         OutputStream out = compress ? new GZIPOutputStream(byteArrayOutputStream) : byteArrayOutputStream;
 
         try
         {
             SerializerContext context = new SerializerContext(xmlContext);
             XmlObjectSerializer serializer = new XmlObjectSerializer();
-            for (ElementDescriptor<?> descriptor : mStateMap.keySet())
+            for (ElementDescriptor<?> descriptor : stateMap.keySet())
             {
                 serializer.useNamespace(context, descriptor);
             }
             serializer.setOutput(context, out, "UTF-8");
-            serializer.serialize(context, SYNCSTATE_DESCRIPTOR, mStateMap);
+            serializer.serialize(context, SYNCSTATE_DESCRIPTOR, stateMap);
             out.flush();
             out.close();
+            byte[] payload = byteArrayOutputStream.toByteArray();
+            byte[] blob = mLastKnownGood != null ? ChecksummedBlob.wrap(payload, mLastKnownGood) : ChecksummedBlob.wrap(payload);
             ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(1);
-            operations.add(SyncStateContract.Helpers.newSetOperation(mUri, mAccount, byteArrayOutputStream.toByteArray()));
+            operations.add(SyncStateContract.Helpers.newSetOperation(mUri, mAccount, blob));
 
             ContentProviderResult[] result = mResolver.applyBatch(mUri.getAuthority(), operations);
+
+            if (mKeepLastKnownGood)
+            {
+                mLastKnownGood = payload;
+            }
         }
         catch (SerializerException | RemoteException | OperationApplicationException e)
         {
             throw new IOException("can't persist syncstate", e);
         }
+
+        // the sync state has been stored, now drop the expired entries
+        for (ElementDescriptor<?> key : expiredEntries)
+        {
+            mStateMap.remove(key);
+            mEntryMetaMap.remove(key);
+        }
+        for (String key : expiredLongs)
+        {
+            mLongMap.remove(key);
+            mLongMetaMap.remove(key);
+        }
+        mPrunedEntries = expiredEntries.size() + expiredLongs.size();
     }
 }
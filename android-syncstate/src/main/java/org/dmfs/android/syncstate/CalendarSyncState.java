@@ -39,10 +39,27 @@ public final class CalendarSyncState extends BaseXmlSyncState
      */
     @TargetApi(14)
     public CalendarSyncState(ContentResolver resolver, Account account)
+    {
+        this(resolver, account, false);
+    }
+
+
+    /**
+     * Create a new {@link CalendarSyncState} for the given account.
+     *
+     * @param resolver
+     *         A {@link ContentResolver} instance.
+     * @param account
+     *         The account of the sync state.
+     * @param keepLastKnownGood
+     *         <code>true</code> to keep the last-known-good copy of the sync state to fall back to in case the current one is corrupt.
+     */
+    @TargetApi(14)
+    public CalendarSyncState(ContentResolver resolver, Account account, boolean keepLastKnownGood)
     {
         super(resolver, account, CalendarContract.SyncState.CONTENT_URI.buildUpon().appendQueryParameter(CalendarContract.CALLER_IS_SYNCADAPTER, "true")
                 .appendQueryParameter(CalendarContract.SyncState.ACCOUNT_TYPE, account.type)
-                .appendQueryParameter(CalendarContract.SyncState.ACCOUNT_NAME, account.name).build());
+                .appendQueryParameter(CalendarContract.SyncState.ACCOUNT_NAME, account.name).build(), keepLastKnownGood);
     }
 
 }
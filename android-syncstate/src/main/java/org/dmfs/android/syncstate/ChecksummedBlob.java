@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+
+/**
+ * Wraps one or more sync state payloads into a single blob, each of them protected by a length and a CRC32 checksum, so corrupt or truncated data can be
+ * detected before it's being parsed.
+ * <p>
+ * The blob layout is:
+ * <pre>
+ * magic (4 bytes) | version (1 byte) | number of copies (1 byte) | { length (4 bytes) | crc32 (4 bytes) | payload (length bytes) }*
+ * </pre>
+ * The copies are written oldest first, so the primary copy is always the last one. Truncation, which typically cuts off the end of the blob, damages the
+ * primary copy first and leaves the older, last-known-good copies intact.
+ * <p>
+ * Blobs that don't start with the magic bytes are considered legacy blobs that contain a single unprotected payload.
+ */
+final class ChecksummedBlob
+{
+    /**
+     * The magic bytes. Neither XML nor gzip data can start with a 0 byte, so these can't be confused with a legacy payload.
+     */
+    private final static byte[] MAGIC = { 0x00, 'd', 'S', 'S' };
+
+    /**
+     * The current version of the blob format.
+     */
+    private final static int VERSION = 1;
+
+    /**
+     * The length of the blob header.
+     */
+    private final static int HEADER_LENGTH = MAGIC.length + 2;
+
+    /**
+     * The length of the header of each copy.
+     */
+    private final static int COPY_HEADER_LENGTH = 8;
+
+
+    private ChecksummedBlob()
+    {
+        // no instances
+    }
+
+
+    /**
+     * Wraps the given payloads into a checksummed blob.
+     *
+     * @param copies
+     *         The payloads to store, the primary copy first, followed by older copies.
+     *
+     * @return The blob.
+     */
+    static byte[] wrap(byte[]... copies)
+    {
+        int size = HEADER_LENGTH;
+        for (byte[] copy : copies)
+        {
+            size += COPY_HEADER_LENGTH + copy.length;
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(size);
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        try
+        {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(copies.length);
+            CRC32 crc = new CRC32();
+            // write the copies in reverse order, so the primary copy is at the end
+            for (int i = copies.length - 1; i >= 0; --i)
+            {
+                byte[] copy = copies[i];
+                crc.reset();
+                crc.update(copy, 0, copy.length);
+                out.writeInt(copy.length);
+                out.writeInt((int) crc.getValue());
+                out.write(copy);
+            }
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            // a ByteArrayOutputStream never throws
+            throw new RuntimeException("can't write to ByteArrayOutputStream", e);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+
+    /**
+     * Unwraps the payloads of the given blob, verifying each copy. The result contains one element per stored copy, the primary copy first, followed by older
+     * copies. Copies that are truncated or don't match their checksum are returned as <code>null</code>.
+     *
+     * @param blob
+     *         The blob to unwrap.
+     *
+     * @return An array of payloads, some of which may be <code>null</code>.
+     *
+     * @throws IOException
+     *         if the blob has an unsupported version.
+     */
+    static byte[][] unwrap(byte[] blob) throws IOException
+    {
+        if (!hasMagic(blob))
+        {
+            // legacy data without checksum, return it as is
+            return new byte[][] { blob };
+        }
+
+        if (blob.length < HEADER_LENGTH)
+        {
+            return new byte[0][];
+        }
+
+        if (blob[MAGIC.length] != VERSION)
+        {
+            throw new IOException("unsupported syncstate version " + blob[MAGIC.length]);
+        }
+
+        byte[][] result = new byte[blob[MAGIC.length + 1] & 0xff][];
+        CRC32 crc = new CRC32();
+        int pos = HEADER_LENGTH;
+        // the copies are stored oldest first, the primary copy is the last one
+        for (int i = result.length - 1; i >= 0 && pos + COPY_HEADER_LENGTH <= blob.length; --i)
+        {
+            int length = readInt(blob, pos);
+            int checksum = readInt(blob, pos + 4);
+            pos += COPY_HEADER_LENGTH;
+
+            if (length < 0 || length > blob.length - pos)
+            {
+                // truncated, all the following (newer) copies are lost as well
+                break;
+            }
+
+            crc.reset();
+            crc.update(blob, pos, length);
+            if ((int) crc.getValue() == checksum)
+            {
+                byte[] copy = new byte[length];
+                System.arraycopy(blob, pos, copy, 0, length);
+                result[i] = copy;
+            }
+            pos += length;
+        }
+        return result;
+    }
+
+
+    private static boolean hasMagic(byte[] blob)
+    {
+        if (blob.length < MAGIC.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; ++i)
+        {
+            if (blob[i] != MAGIC[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static int readInt(byte[] data, int pos)
+    {
+        return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+    }
+}
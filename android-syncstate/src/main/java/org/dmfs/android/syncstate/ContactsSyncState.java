@@ -37,10 +37,26 @@ public final class ContactsSyncState extends BaseXmlSyncState
      *         The account of the sync state.
      */
     public ContactsSyncState(ContentResolver resolver, Account account)
+    {
+        this(resolver, account, false);
+    }
+
+
+    /**
+     * Create a new {@link ContactsSyncState} for the given account.
+     *
+     * @param resolver
+     *         A {@link ContentResolver} instance.
+     * @param account
+     *         The account of the sync state.
+     * @param keepLastKnownGood
+     *         <code>true</code> to keep the last-known-good copy of the sync state to fall back to in case the current one is corrupt.
+     */
+    public ContactsSyncState(ContentResolver resolver, Account account, boolean keepLastKnownGood)
     {
         super(resolver, account, ContactsContract.SyncState.CONTENT_URI.buildUpon().appendQueryParameter(ContactsContract.CALLER_IS_SYNCADAPTER, "true")
                 .appendQueryParameter(ContactsContract.SyncState.ACCOUNT_TYPE, account.type)
-                .appendQueryParameter(ContactsContract.SyncState.ACCOUNT_NAME, account.name).build());
+                .appendQueryParameter(ContactsContract.SyncState.ACCOUNT_NAME, account.name).build(), keepLastKnownGood);
     }
 
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+/**
+ * A {@link PruningPolicy} that drops entries which have outlived their time to live and, optionally, entries that haven't been touched for a given time.
+ */
+public final class ExpiryPruningPolicy implements PruningPolicy
+{
+    /**
+     * A {@link PruningPolicy} that only drops entries which have outlived their time to live.
+     */
+    public final static PruningPolicy TTL_ONLY = new ExpiryPruningPolicy(0);
+
+    /**
+     * The maximum time in milliseconds an entry is kept without being touched, or <code>0</code> to keep untouched entries forever.
+     */
+    private final long mMaxIdle;
+
+
+    /**
+     * Creates an {@link ExpiryPruningPolicy}.
+     *
+     * @param maxIdle
+     *         The maximum time in milliseconds an entry is kept without being set or read, or <code>0</code> to only drop entries which have outlived their
+     *         time to live.
+     */
+    public ExpiryPruningPolicy(long maxIdle)
+    {
+        if (maxIdle < 0)
+        {
+            throw new IllegalArgumentException("maxIdle must not be negative");
+        }
+        mMaxIdle = maxIdle;
+    }
+
+
+    @Override
+    public boolean isExpired(Object key, long lastTouched, long ttl, long now)
+    {
+        long idle = now - lastTouched;
+        return ttl > 0 && idle >= ttl || mMaxIdle > 0 && idle >= mMaxIdle;
+    }
+
+
+    @Override
+    public boolean tracksIdleTime()
+    {
+        return mMaxIdle > 0;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+/**
+ * The key of a primitive <code>long</code> value in a sync state. Unlike values stored with an {@link org.dmfs.xmlobjects.ElementDescriptor}, long values are
+ * kept unboxed, so updating them doesn't create any garbage. This makes them suitable for counters, sequence numbers and timestamps that are updated
+ * frequently.
+ * <p>
+ * Descriptors are meant to be created once and kept in a static field. Two descriptors with the same name refer to the same value.
+ */
+public final class LongDescriptor
+{
+    /**
+     * The name of this value.
+     */
+    public final String name;
+
+
+    /**
+     * Creates a new {@link LongDescriptor} with the given name.
+     *
+     * @param name
+     *         The name of the value. Names should be unique within an application, so it's advisable to use a prefix, like
+     *         <code>"org.example.lastSync"</code>.
+     */
+    public LongDescriptor(String name)
+    {
+        if (name == null || name.length() == 0)
+        {
+            throw new IllegalArgumentException("name must not be empty");
+        }
+        this.name = name;
+    }
+
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof LongDescriptor && name.equals(((LongDescriptor) o).name);
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return name.hashCode();
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
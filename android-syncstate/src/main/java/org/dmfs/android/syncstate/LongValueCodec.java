@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+import java.io.IOException;
+import java.util.Map;
+
+
+/**
+ * Encodes named <code>long</code> arrays into a single compact string and back.
+ * <p>
+ * Entries are separated by a space, each entry has the form <code>name=value[,value]*</code>. Values are written in radix 36. The characters <code>%</code>,
+ * <code>=</code>, <code>,</code>, whitespace and control characters are percent-escaped in names.
+ */
+final class LongValueCodec
+{
+    private final static int RADIX = Character.MAX_RADIX;
+
+
+    private LongValueCodec()
+    {
+        // no instances
+    }
+
+
+    /**
+     * Encodes the given values.
+     *
+     * @param values
+     *         A {@link Map} of names to values.
+     *
+     * @return The encoded string.
+     */
+    static String encode(Map<String, long[]> values)
+    {
+        StringBuilder result = new StringBuilder(values.size() * 24);
+        for (Map.Entry<String, long[]> entry : values.entrySet())
+        {
+            if (result.length() > 0)
+            {
+                result.append(' ');
+            }
+            appendEscaped(result, entry.getKey());
+            long[] value = entry.getValue();
+            for (int i = 0; i < value.length; ++i)
+            {
+                result.append(i == 0 ? '=' : ',');
+                result.append(Long.toString(value[i], RADIX));
+            }
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * Decodes the given string into the given {@link Map}.
+     *
+     * @param encoded
+     *         The encoded string.
+     * @param values
+     *         The {@link Map} to add the values to.
+     *
+     * @throws IOException
+     *         if the string is not a valid encoding.
+     */
+    static void decode(String encoded, Map<String, long[]> values) throws IOException
+    {
+        try
+        {
+            for (String entry : encoded.trim().split("\\s+"))
+            {
+                if (entry.length() == 0)
+                {
+                    continue;
+                }
+                int eq = entry.indexOf('=');
+                if (eq <= 0)
+                {
+                    throw new IOException("invalid long value entry " + entry);
+                }
+                String[] parts = entry.substring(eq + 1).split(",");
+                long[] value = new long[parts.length];
+                for (int i = 0; i < parts.length; ++i)
+                {
+                    value[i] = Long.parseLong(parts[i], RADIX);
+                }
+                values.put(unescape(entry.substring(0, eq)), value);
+            }
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException e)
+        {
+            throw (IOException) (new IOException("invalid long values").initCause(e));
+        }
+    }
+
+
+    private static void appendEscaped(StringBuilder out, String name)
+    {
+        for (int i = 0, len = name.length(); i < len; ++i)
+        {
+            char c = name.charAt(i);
+            if (c == '%' || c == '=' || c == ',' || c <= ' ')
+            {
+                out.append('%');
+                if (c < 0x10)
+                {
+                    out.append('0');
+                }
+                out.append(Integer.toHexString(c));
+            }
+            else
+            {
+                out.append(c);
+            }
+        }
+    }
+
+
+    private static String unescape(String name)
+    {
+        if (name.indexOf('%') < 0)
+        {
+            return name;
+        }
+        StringBuilder result = new StringBuilder(name.length());
+        for (int i = 0, len = name.length(); i < len; ++i)
+        {
+            char c = name.charAt(i);
+            if (c == '%')
+            {
+                result.append((char) Integer.parseInt(name.substring(i + 1, i + 3), 16));
+                i += 2;
+            }
+            else
+            {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+/**
+ * Interface of a policy that decides which entries of a sync state are dropped when it's stored.
+ */
+public interface PruningPolicy
+{
+    /**
+     * Returns whether the entry with the given key should be dropped.
+     *
+     * @param key
+     *         The key of the entry, either an {@link org.dmfs.xmlobjects.ElementDescriptor} or a {@link LongDescriptor}.
+     * @param lastTouched
+     *         The time in milliseconds since the epoch when the entry has been set the last time. Reads count as well if the entry has a time to live or
+     *         {@link #tracksIdleTime()} returns <code>true</code>.
+     * @param ttl
+     *         The time to live of the entry in milliseconds or <code>0</code> if the entry has no time to live.
+     * @param now
+     *         The current time in milliseconds since the epoch.
+     *
+     * @return <code>true</code> to drop the entry, <code>false</code> to keep it.
+     */
+    boolean isExpired(Object key, long lastTouched, long ttl, long now);
+
+    /**
+     * Returns whether this policy takes the last-touched time of entries without time to live into account. Only if this returns <code>true</code>, reads
+     * update the last-touched time of such entries and their last-touched time is stored with the sync state.
+     *
+     * @return <code>true</code> if this policy drops entries that haven't been touched for some time.
+     */
+    boolean tracksIdleTime();
+}
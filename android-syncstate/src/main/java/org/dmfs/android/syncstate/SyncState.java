@@ -59,6 +59,38 @@ public interface SyncState extends SyncStateReader
      */
     <V> V set(ElementDescriptor<V> key, V value);
 
+    /**
+     * Set the <code>long</code> value of the given key, overriding any previous value for the given key. Other than {@link #set(ElementDescriptor, Object)}
+     * this doesn't box the value, so it doesn't allocate any memory once the key exists.
+     *
+     * @param key
+     *         The key to store.
+     * @param value
+     *         The value to store.
+     */
+    void setLong(LongDescriptor key, long value);
+
+    /**
+     * Add the given delta to the <code>long</code> value of the given key. If there is no value for the key yet, it's assumed to be <code>0</code>.
+     *
+     * @param key
+     *         The key of the value to increment.
+     * @param delta
+     *         The value to add, may be negative.
+     *
+     * @return The new value.
+     */
+    long increment(LongDescriptor key, long delta);
+
+    /**
+     * Remove the <code>long</code> value of the given key from the sync state. The value is dropped from the stored sync state with the next call to {@link
+     * #store()} or {@link #store(XmlContext)}.
+     *
+     * @param key
+     *         The key of the value to remove.
+     */
+    void removeLong(LongDescriptor key);
+
     /**
      * Persist the sync state using the default {@link XmlContext}.
      *
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+/**
+ * The stored copy of a sync state that has been loaded.
+ */
+public enum SyncStateCopy
+{
+    /**
+     * No sync state has been loaded, either because it hasn't been loaded yet or because there is no stored sync state.
+     */
+    NONE,
+
+    /**
+     * The primary copy has been loaded.
+     */
+    PRIMARY,
+
+    /**
+     * The primary copy was corrupt, the last-known-good copy has been loaded instead.
+     */
+    LAST_KNOWN_GOOD
+}
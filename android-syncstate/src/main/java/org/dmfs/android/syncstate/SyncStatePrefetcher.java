@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+import android.accounts.Account;
+import android.content.ContentResolver;
+import android.provider.CalendarContract;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.util.Pair;
+
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.XmlContext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * Loads sync states in the background, so they are readily available when the sync adapter needs them. This is meant to be used during app start up to
+ * take the provider query and parsing of the sync state off the critical path of the first sync.
+ * <p>
+ * Call {@link #prefetch(Account, String)} for each account and authority that's likely to be synced soon and {@link #take(Account, String)} in the sync
+ * adapter to get the loaded {@link BaseXmlSyncState}. Each prefetched sync state is handed out only once. If a sync state has not been prefetched, the
+ * prefetch has been cancelled or it's still waiting for the {@link Executor}, {@link #take(Account, String)} loads it on the calling thread.
+ * <p>
+ * Prefetched sync states are snapshots. This assumes the sync adapter is the only one writing the sync state. If something else may store it between
+ * prefetch and sync, use {@link #take(Account, String, long)} with a maximum age, so outdated snapshots are loaded again. Storing an outdated snapshot
+ * overrides any newer sync state.
+ * <p>
+ * At most <code>maxConcurrentQueries</code> prefetches are submitted to the {@link Executor} at the same time, the others wait in a queue without occupying
+ * an executor thread.
+ * <p>
+ * Sync adapters that rely on the last-known-good copy of their sync state must create the prefetcher with <code>keepLastKnownGood</code> set to
+ * <code>true</code>, otherwise the sync states it hands out don't retain the previous copy when they are stored.
+ * <p>
+ * Supported authorities are {@link CalendarContract#AUTHORITY} and {@link ContactsContract#AUTHORITY}.
+ */
+public final class SyncStatePrefetcher
+{
+    /**
+     * A {@link ContentResolver}.
+     */
+    private final ContentResolver mResolver;
+
+    /**
+     * The {@link Executor} to load the sync states on.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * The {@link XmlContext} to load the sync states with.
+     */
+    private final XmlContext mXmlContext;
+
+    /**
+     * Whether the sync states keep their last-known-good copy.
+     */
+    private final boolean mKeepLastKnownGood;
+
+    /**
+     * The maximum number of prefetches to run at the same time.
+     */
+    private final int mMaxConcurrentQueries;
+
+    /**
+     * The pending and completed prefetch tasks by account and authority. This also serves as the lock for {@link #mQueue} and {@link #mRunning}.
+     */
+    private final Map<Pair<Account, String>, PrefetchTask> mTasks = new HashMap<Pair<Account, String>, PrefetchTask>(8);
+
+    /**
+     * The tasks that have not been submitted to the {@link Executor} yet.
+     */
+    private final Queue<PrefetchTask> mQueue = new ArrayDeque<PrefetchTask>(8);
+
+    /**
+     * The number of tasks that have been submitted to the {@link Executor} and have not completed yet.
+     */
+    private int mRunning;
+
+
+    /**
+     * Creates a new {@link SyncStatePrefetcher} that loads sync states using the default {@link XmlContext}.
+     *
+     * @param resolver
+     *         A {@link ContentResolver} instance.
+     * @param executor
+     *         The {@link Executor} to load the sync states on.
+     * @param maxConcurrentQueries
+     *         The maximum number of sync states to load at the same time.
+     */
+    public SyncStatePrefetcher(ContentResolver resolver, Executor executor, int maxConcurrentQueries)
+    {
+        this(resolver, executor, maxConcurrentQueries, ElementDescriptor.DEFAULT_CONTEXT, false);
+    }
+
+
+    /**
+     * Creates a new {@link SyncStatePrefetcher} that loads sync states using the default {@link XmlContext}.
+     *
+     * @param resolver
+     *         A {@link ContentResolver} instance.
+     * @param executor
+     *         The {@link Executor} to load the sync states on.
+     * @param maxConcurrentQueries
+     *         The maximum number of sync states to load at the same time.
+     * @param keepLastKnownGood
+     *         <code>true</code> to create sync states that keep the last-known-good copy, see {@link BaseXmlSyncState#BaseXmlSyncState(ContentResolver,
+     *         Account, android.net.Uri, boolean)}.
+     */
+    public SyncStatePrefetcher(ContentResolver resolver, Executor executor, int maxConcurrentQueries, boolean keepLastKnownGood)
+    {
+        this(resolver, executor, maxConcurrentQueries, ElementDescriptor.DEFAULT_CONTEXT, keepLastKnownGood);
+    }
+
+
+    /**
+     * Creates a new {@link SyncStatePrefetcher} that loads sync states using the given {@link XmlContext}.
+     *
+     * @param resolver
+     *         A {@link ContentResolver} instance.
+     * @param executor
+     *         The {@link Executor} to load the sync states on.
+     * @param maxConcurrentQueries
+     *         The maximum number of sync states to load at the same time.
+     * @param xmlContext
+     *         The {@link XmlContext} to use.
+     */
+    public SyncStatePrefetcher(ContentResolver resolver, Executor executor, int maxConcurrentQueries, XmlContext xmlContext)
+    {
+        this(resolver, executor, maxConcurrentQueries, xmlContext, false);
+    }
+
+
+    /**
+     * Creates a new {@link SyncStatePrefetcher} that loads sync states using the given {@link XmlContext}.
+     *
+     * @param resolver
+     *         A {@link ContentResolver} instance.
+     * @param executor
+     *         The {@link Executor} to load the sync states on.
+     * @param maxConcurrentQueries
+     *         The maximum number of sync states to load at the same time.
+     * @param xmlContext
+     *         The {@link XmlContext} to use.
+     * @param keepLastKnownGood
+     *         <code>true</code> to create sync states that keep the last-known-good copy, see {@link BaseXmlSyncState#BaseXmlSyncState(ContentResolver,
+     *         Account, android.net.Uri, boolean)}.
+     */
+    public SyncStatePrefetcher(ContentResolver resolver, Executor executor, int maxConcurrentQueries, XmlContext xmlContext, boolean keepLastKnownGood)
+    {
+        if (maxConcurrentQueries < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrentQueries must be at least 1");
+        }
+        mResolver = resolver;
+        mExecutor = executor;
+        mMaxConcurrentQueries = maxConcurrentQueries;
+        mXmlContext = xmlContext;
+        mKeepLastKnownGood = keepLastKnownGood;
+    }
+
+
+    /**
+     * Start loading the sync state of the given account and authority in the background. This does nothing if the sync state is already being prefetched.
+     *
+     * @param account
+     *         The {@link Account} of the sync state.
+     * @param authority
+     *         The authority of the sync state.
+     *
+     * @throws IllegalArgumentException
+     *         if the authority is not supported.
+     * @throws RejectedExecutionException
+     *         if the {@link Executor} doesn't accept the task. The rejected prefetch is cancelled.
+     */
+    public void prefetch(Account account, String authority)
+    {
+        final BaseXmlSyncState syncState = newSyncState(account, authority);
+        PrefetchTask task = new PrefetchTask(new Callable<BaseXmlSyncState>()
+        {
+            @Override
+            public BaseXmlSyncState call() throws Exception
+            {
+                syncState.load(mXmlContext);
+                return syncState;
+            }
+        });
+
+        Pair<Account, String> key = Pair.create(account, authority);
+        synchronized (mTasks)
+        {
+            if (mTasks.containsKey(key))
+            {
+                // already prefetching
+                return;
+            }
+            mTasks.put(key, task);
+            mQueue.add(task);
+        }
+        scheduleNext();
+    }
+
+
+    /**
+     * Returns the loaded sync state of the given account and authority, regardless of when it has been prefetched.
+     *
+     * @param account
+     *         The {@link Account} of the sync state.
+     * @param authority
+     *         The authority of the sync state.
+     *
+     * @return The loaded {@link BaseXmlSyncState}.
+     *
+     * @throws IOException
+     *         if the sync state can't be read.
+     * @throws IllegalArgumentException
+     *         if the authority is not supported.
+     * @see #take(Account, String, long)
+     */
+    public BaseXmlSyncState take(Account account, String authority) throws IOException
+    {
+        return take(account, authority, Long.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the loaded sync state of the given account and authority. If the sync state is still being prefetched, this waits for it to complete. If it
+     * hasn't been prefetched, the prefetch hasn't started yet or the prefetched sync state is older than the given maximum age, it's loaded on the calling
+     * thread.
+     * <p>
+     * Each prefetched sync state is returned only once, subsequent calls load the sync state again.
+     *
+     * @param account
+     *         The {@link Account} of the sync state.
+     * @param authority
+     *         The authority of the sync state.
+     * @param maxAge
+     *         The maximum time in milliseconds since a prefetched sync state has been loaded.
+     *
+     * @return The loaded {@link BaseXmlSyncState}.
+     *
+     * @throws IOException
+     *         if the sync state can't be read.
+     * @throws IllegalArgumentException
+     *         if the authority is not supported.
+     */
+    public BaseXmlSyncState take(Account account, String authority, long maxAge) throws IOException
+    {
+        PrefetchTask task;
+        synchronized (mTasks)
+        {
+            task = mTasks.remove(Pair.create(account, authority));
+            if (task != null)
+            {
+                mQueue.remove(task);
+            }
+        }
+
+        if (task != null)
+        {
+            // run the task right here if the executor hasn't started it yet, this does nothing if it has
+            task.run();
+            try
+            {
+                BaseXmlSyncState syncState = task.get();
+                if (SystemClock.elapsedRealtime() - task.mLoadedAt <= maxAge)
+                {
+                    return syncState;
+                }
+                // the prefetched sync state is too old, load it again below
+            }
+            catch (CancellationException e)
+            {
+                // the prefetch has been cancelled, load it below
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for syncstate");
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof IOException)
+                {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("can't read syncstate", e.getCause());
+            }
+        }
+
+        BaseXmlSyncState syncState = newSyncState(account, authority);
+        syncState.load(mXmlContext);
+        return syncState;
+    }
+
+
+    /**
+     * Cancel prefetching the sync state of the given account and authority. A sync state that has been prefetched already is discarded.
+     * <p>
+     * A prefetch that's already running is not interrupted, its result is just discarded.
+     *
+     * @param account
+     *         The {@link Account} of the sync state.
+     * @param authority
+     *         The authority of the sync state.
+     */
+    public void cancel(Account account, String authority)
+    {
+        PrefetchTask task;
+        synchronized (mTasks)
+        {
+            task = mTasks.remove(Pair.create(account, authority));
+            if (task != null)
+            {
+                mQueue.remove(task);
+            }
+        }
+
+        if (task != null)
+        {
+            task.cancel(false);
+        }
+    }
+
+
+    /**
+     * Cancel all pending prefetches and discard all prefetched sync states. Prefetches that are already running are not interrupted, their results are just
+     * discarded.
+     */
+    public void cancelAll()
+    {
+        synchronized (mTasks)
+        {
+            for (PrefetchTask task : mTasks.values())
+            {
+                task.cancel(false);
+            }
+            mTasks.clear();
+            mQueue.clear();
+        }
+    }
+
+
+    /**
+     * Submit queued tasks to the {@link Executor} as long as fewer than the maximum number of concurrent queries are running. Tasks wait in the queue rather
+     * than on an executor thread, so they never block a shared executor.
+     *
+     * @throws RejectedExecutionException
+     *         if the {@link Executor} doesn't accept a task. The task is cancelled in that case.
+     */
+    private void scheduleNext()
+    {
+        while (true)
+        {
+            final PrefetchTask task;
+            synchronized (mTasks)
+            {
+                if (mRunning >= mMaxConcurrentQueries || mQueue.isEmpty())
+                {
+                    return;
+                }
+                task = mQueue.remove();
+                ++mRunning;
+            }
+
+            try
+            {
+                mExecutor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            task.run();
+                        }
+                        finally
+                        {
+                            synchronized (mTasks)
+                            {
+                                --mRunning;
+                            }
+                        }
+
+                        try
+                        {
+                            scheduleNext();
+                        }
+                        catch (RejectedExecutionException e)
+                        {
+                            // the rejected task has been cancelled, take() will load it synchronously
+                        }
+                    }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the task will never run, don't let take() wait for it
+                synchronized (mTasks)
+                {
+                    --mRunning;
+                    mTasks.values().remove(task);
+                }
+                task.cancel(false);
+                throw e;
+            }
+        }
+    }
+
+
+    private BaseXmlSyncState newSyncState(Account account, String authority)
+    {
+        if (CalendarContract.AUTHORITY.equals(authority))
+        {
+            return new CalendarSyncState(mResolver, account, mKeepLastKnownGood);
+        }
+        if (ContactsContract.AUTHORITY.equals(authority))
+        {
+            return new ContactsSyncState(mResolver, account, mKeepLastKnownGood);
+        }
+        throw new IllegalArgumentException("unsupported authority " + authority);
+    }
+
+
+    /**
+     * A {@link FutureTask} that records when it has completed loading its sync state.
+     */
+    private final static class PrefetchTask extends FutureTask<BaseXmlSyncState>
+    {
+        /**
+         * The {@link SystemClock#elapsedRealtime()} when the sync state has been loaded.
+         */
+        private long mLoadedAt;
+
+
+        private PrefetchTask(Callable<BaseXmlSyncState> callable)
+        {
+            super(callable);
+        }
+
+
+        @Override
+        protected void set(BaseXmlSyncState syncState)
+        {
+            // this is visible to anyone who gets the result
+            mLoadedAt = SystemClock.elapsedRealtime();
+            super.set(syncState);
+        }
+    }
+}
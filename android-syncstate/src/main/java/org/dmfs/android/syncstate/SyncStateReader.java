@@ -34,4 +34,16 @@ public interface SyncStateReader
      * @return The value or <code>null</code> if no value exists for this key.
      */
     <V> V get(ElementDescriptor<V> key);
+
+    /**
+     * Get the <code>long</code> value for a given key from the sync state.
+     *
+     * @param key
+     *         The {@link LongDescriptor} of the value to get.
+     * @param defaultValue
+     *         The value to return if no value exists for this key.
+     *
+     * @return The value or <code>defaultValue</code> if no value exists for this key.
+     */
+    long getLong(LongDescriptor key, long defaultValue);
 }
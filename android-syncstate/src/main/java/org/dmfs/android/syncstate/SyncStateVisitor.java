@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.syncstate;
+
+/**
+ * Interface of an object that receives values streamed from a stored sync state.
+ *
+ * @param <V>
+ *         The type of the values.
+ */
+public interface SyncStateVisitor<V>
+{
+    /**
+     * Called for each value in the sync state.
+     *
+     * @param value
+     *         The value, may be <code>null</code> if the stored element results in a <code>null</code> value.
+     *
+     * @return <code>true</code> to continue with the next value, <code>false</code> to stop streaming.
+     */
+    boolean visit(V value);
+}
@@ -0,0 +1,82 @@
+package org.dmfs.android.syncstate;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * Test {@link ChecksummedBlob}.
+ */
+public class ChecksummedBlobTest
+{
+    private final static byte[] PRIMARY = "<syncstate>primary</syncstate>".getBytes();
+
+    private final static byte[] BACKUP = "<syncstate>backup</syncstate>".getBytes();
+
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        byte[][] copies = ChecksummedBlob.unwrap(ChecksummedBlob.wrap(PRIMARY, BACKUP));
+        assertEquals(2, copies.length);
+        assertArrayEquals(PRIMARY, copies[0]);
+        assertArrayEquals(BACKUP, copies[1]);
+    }
+
+
+    @Test
+    public void testLegacy() throws IOException
+    {
+        byte[][] copies = ChecksummedBlob.unwrap(PRIMARY);
+        assertEquals(1, copies.length);
+        assertArrayEquals(PRIMARY, copies[0]);
+    }
+
+
+    @Test
+    public void testCorruptPrimary() throws IOException
+    {
+        byte[] blob = ChecksummedBlob.wrap(PRIMARY, BACKUP);
+        // flip a bit in the primary payload, which is stored last
+        blob[blob.length - 5] ^= 0x01;
+
+        byte[][] copies = ChecksummedBlob.unwrap(blob);
+        assertEquals(2, copies.length);
+        assertNull(copies[0]);
+        assertArrayEquals(BACKUP, copies[1]);
+    }
+
+
+    @Test
+    public void testTruncated() throws IOException
+    {
+        byte[] blob = ChecksummedBlob.wrap(PRIMARY, BACKUP);
+        byte[] truncated = new byte[blob.length - 5];
+        System.arraycopy(blob, 0, truncated, 0, truncated.length);
+
+        // cutting off the end damages the primary copy but leaves the backup intact
+        byte[][] copies = ChecksummedBlob.unwrap(truncated);
+        assertEquals(2, copies.length);
+        assertNull(copies[0]);
+        assertArrayEquals(BACKUP, copies[1]);
+    }
+
+
+    @Test
+    public void testTruncatedBoth() throws IOException
+    {
+        byte[] blob = ChecksummedBlob.wrap(PRIMARY, BACKUP);
+        byte[] truncated = new byte[10];
+        System.arraycopy(blob, 0, truncated, 0, truncated.length);
+
+        byte[][] copies = ChecksummedBlob.unwrap(truncated);
+        assertEquals(2, copies.length);
+        assertNull(copies[0]);
+        assertNull(copies[1]);
+    }
+}
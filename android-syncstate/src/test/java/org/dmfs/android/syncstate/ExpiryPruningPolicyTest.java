@@ -0,0 +1,34 @@
+package org.dmfs.android.syncstate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test {@link ExpiryPruningPolicy}.
+ */
+public class ExpiryPruningPolicyTest
+{
+
+    @Test
+    public void testTtlOnly()
+    {
+        assertFalse(ExpiryPruningPolicy.TTL_ONLY.isExpired(null, 1000, 0, Long.MAX_VALUE));
+        assertFalse(ExpiryPruningPolicy.TTL_ONLY.isExpired(null, 1000, 500, 1499));
+        assertTrue(ExpiryPruningPolicy.TTL_ONLY.isExpired(null, 1000, 500, 1500));
+        assertFalse(ExpiryPruningPolicy.TTL_ONLY.tracksIdleTime());
+    }
+
+
+    @Test
+    public void testMaxIdle()
+    {
+        PruningPolicy policy = new ExpiryPruningPolicy(1000);
+        assertFalse(policy.isExpired(null, 1000, 0, 1999));
+        assertTrue(policy.isExpired(null, 1000, 0, 2000));
+        assertTrue(policy.isExpired(null, 1000, 500, 1500));
+        assertTrue(policy.tracksIdleTime());
+    }
+}
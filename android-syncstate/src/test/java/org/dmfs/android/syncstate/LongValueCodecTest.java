@@ -0,0 +1,53 @@
+package org.dmfs.android.syncstate;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Test {@link LongValueCodec}.
+ */
+public class LongValueCodecTest
+{
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        Map<String, long[]> values = new HashMap<String, long[]>();
+        values.put("org.example.lastSync", new long[] { 1589371234567L });
+        values.put("org.example.count", new long[] { -1 });
+        values.put("pairs", new long[] { Long.MIN_VALUE, Long.MAX_VALUE });
+        values.put("name with = , % and spaces", new long[] { 0 });
+
+        Map<String, long[]> result = new HashMap<String, long[]>();
+        LongValueCodec.decode(LongValueCodec.encode(values), result);
+
+        assertEquals(values.size(), result.size());
+        for (Map.Entry<String, long[]> entry : values.entrySet())
+        {
+            assertArrayEquals(entry.getValue(), result.get(entry.getKey()));
+        }
+    }
+
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        Map<String, long[]> result = new HashMap<String, long[]>();
+        LongValueCodec.decode(LongValueCodec.encode(new HashMap<String, long[]>()), result);
+        assertEquals(0, result.size());
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testInvalid() throws IOException
+    {
+        LongValueCodec.decode("name=notanumber!", new HashMap<String, long[]>());
+    }
+}